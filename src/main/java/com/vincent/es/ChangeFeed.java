@@ -0,0 +1,260 @@
+package com.vincent.es;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldSort;
+import co.elastic.clients.elasticsearch._types.Level;
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.GetIndexRequest;
+import co.elastic.clients.elasticsearch.indices.IndicesStatsRequest;
+import co.elastic.clients.elasticsearch.indices.RefreshRequest;
+import co.elastic.clients.json.JsonData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Polls an index for documents changed since the last checkpoint, ordered by
+ * _seq_no, and publishes each batch to the subscribers. The checkpoint is the
+ * last delivered _seq_no and is saved to a local file together with the index
+ * UUID, so a new feed on the same file resumes where the previous one stopped,
+ * and starts over if the index has been recreated.
+ * <p>
+ * Each poll only reads up to the shard's global checkpoint, and refreshes the
+ * index first, so every operation below that point is searchable. A _seq_no
+ * which is still missing then belongs to a document that was updated again or
+ * deleted, and can be skipped safely.
+ * <p>
+ * _seq_no is assigned per shard, so only indices with a single primary shard
+ * are accepted. Deleted documents are not reported.
+ */
+public class ChangeFeed<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeed.class);
+    private static final String SEQ_NO_FIELD = "_seq_no";
+    private static final long NO_CHECKPOINT = -1;
+
+    private final ElasticsearchClient client;
+    private final String index;
+    private final Class<T> clazz;
+    private final Path checkpointFile;
+    private final int batchSize;
+    private final List<Consumer<List<Hit<T>>>> subscribers = new CopyOnWriteArrayList<>();
+    private final Object schedulerLock = new Object();
+
+    // Written by poll(), and read by getCheckpoint() from other threads.
+    private volatile String indexUuid;
+    private volatile long checkpoint;
+    private ScheduledExecutorService scheduler;
+
+    public ChangeFeed(ElasticsearchClient client, String index, Class<T> clazz, Path checkpointFile, int batchSize) throws IOException {
+        this.client = client;
+        this.index = index;
+        this.clazz = clazz;
+        this.checkpointFile = checkpointFile;
+        this.batchSize = batchSize;
+
+        this.indexUuid = fetchIndexUuid();
+        this.checkpoint = loadCheckpoint();
+    }
+
+    /**
+     * Delivery is at least once. If any subscriber throws, the checkpoint is
+     * not advanced and the whole batch is delivered again to every subscriber
+     * on the next poll, so subscribers must tolerate repeated changes.
+     */
+    public void subscribe(Consumer<List<Hit<T>>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Delivers all changes up to the global checkpoint and returns how many
+     * documents were delivered.
+     */
+    public synchronized int poll() throws IOException {
+        var currentIndexUuid = fetchIndexUuid();
+        if (!currentIndexUuid.equals(indexUuid)) {
+            LOGGER.info("Index {} was recreated, reading changes from the beginning", index);
+            indexUuid = currentIndexUuid;
+            checkpoint = NO_CHECKPOINT;
+            saveCheckpoint();
+        }
+
+        var globalCheckpoint = fetchGlobalCheckpoint();
+        if (globalCheckpoint <= checkpoint) {
+            return 0;
+        }
+
+        var refreshReq = new RefreshRequest.Builder()
+                .index(index)
+                .build();
+        client.indices().refresh(refreshReq);
+
+        var total = 0;
+        List<Hit<T>> hits;
+
+        do {
+            var query = RangeQuery.of(b -> b
+                            .field(SEQ_NO_FIELD)
+                            .gt(JsonData.of(checkpoint))
+                            .lte(JsonData.of(globalCheckpoint)))
+                    ._toQuery();
+            var seqNoSort = SortOptions.of(b -> b
+                    .field(FieldSort.of(f -> f.field(SEQ_NO_FIELD).order(SortOrder.Asc))));
+
+            var searchReq = new SearchRequest.Builder()
+                    .index(index)
+                    .query(query)
+                    .sort(seqNoSort)
+                    .seqNoPrimaryTerm(true)
+                    .size(batchSize)
+                    .build();
+            hits = client.search(searchReq, clazz).hits().hits();
+            if (hits.isEmpty()) {
+                break;
+            }
+
+            for (var subscriber : subscribers) {
+                subscriber.accept(hits);
+            }
+
+            checkpoint = hits.get(hits.size() - 1).seqNo();
+            saveCheckpoint();
+            total += hits.size();
+        } while (hits.size() == batchSize);
+
+        // Operations up to the global checkpoint were all searchable,
+        // so the remaining gaps are overwritten or deleted documents.
+        if (checkpoint < globalCheckpoint) {
+            checkpoint = globalCheckpoint;
+            saveCheckpoint();
+        }
+
+        return total;
+    }
+
+    public void start(long intervalMillis) {
+        synchronized (schedulerLock) {
+            if (scheduler != null) {
+                return;
+            }
+
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "change-feed-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    poll();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Failed to poll changes of index {}", index, e);
+                }
+            }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops polling and waits for a running poll to finish, so no subscriber
+     * is called and the checkpoint file is not written after this returns.
+     */
+    public void stop() throws InterruptedException {
+        ScheduledExecutorService stoppingScheduler;
+        synchronized (schedulerLock) {
+            if (scheduler == null) {
+                return;
+            }
+
+            stoppingScheduler = scheduler;
+            scheduler = null;
+        }
+
+        stoppingScheduler.shutdown();
+        stoppingScheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    private String fetchIndexUuid() throws IOException {
+        var getIndexReq = new GetIndexRequest.Builder()
+                .index(index)
+                .build();
+        var settings = client.indices()
+                .get(getIndexReq)
+                .result()
+                .values()
+                .iterator()
+                .next()
+                .settings();
+        var indexSettings = settings.index() == null ? settings : settings.index();
+
+        if (indexSettings.numberOfShards() == null) {
+            throw new IllegalStateException("Number of shards of index " + index + " is not available");
+        }
+
+        var numberOfShards = Integer.parseInt(indexSettings.numberOfShards());
+        if (numberOfShards != 1) {
+            throw new IllegalArgumentException(
+                    "Index " + index + " has " + numberOfShards + " primary shards, but change feed requires 1");
+        }
+
+        return indexSettings.uuid();
+    }
+
+    private long fetchGlobalCheckpoint() throws IOException {
+        var statsReq = new IndicesStatsRequest.Builder()
+                .index(index)
+                .level(Level.Shards)
+                .build();
+        var indexStats = client.indices()
+                .stats(statsReq)
+                .indices()
+                .values()
+                .iterator()
+                .next();
+
+        return indexStats.shards()
+                .values()
+                .stream()
+                .flatMap(Collection::stream)
+                .filter(shard -> shard.routing() == null || shard.routing().primary())
+                .mapToLong(shard -> shard.seqNo().globalCheckpoint())
+                .findFirst()
+                .orElse(NO_CHECKPOINT);
+    }
+
+    private long loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return NO_CHECKPOINT;
+        }
+
+        var content = Files.readString(checkpointFile, StandardCharsets.UTF_8).trim().split("\\s+");
+        if (content.length != 2 || !content[0].equals(indexUuid)) {
+            return NO_CHECKPOINT;
+        }
+
+        return Long.parseLong(content[1]);
+    }
+
+    private void saveCheckpoint() throws IOException {
+        var tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.writeString(tempFile, indexUuid + " " + checkpoint, StandardCharsets.UTF_8);
+        Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
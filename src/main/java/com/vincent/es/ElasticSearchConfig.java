@@ -12,9 +12,13 @@ import org.springframework.context.annotation.Configuration;
 public class ElasticSearchConfig {
 
     @Bean
-    public ElasticsearchClient elasticsearchClient() {
+    public RestClient restClient() {
         var httpHost = new HttpHost("localhost", 9200);
-        var restClient = RestClient.builder(httpHost).build();
+        return RestClient.builder(httpHost).build();
+    }
+
+    @Bean
+    public ElasticsearchClient elasticsearchClient(RestClient restClient) {
         var transport = new RestClientTransport(restClient, new JacksonJsonpMapper());
 
         return new ElasticsearchClient(transport);
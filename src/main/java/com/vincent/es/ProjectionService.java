@@ -0,0 +1,149 @@
+package com.vincent.es;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.FieldAndFormat;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.GetRequest;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.SourceConfig;
+import co.elastic.clients.elasticsearch.core.search.SourceFilter;
+import co.elastic.clients.json.JsonData;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Reads only the requested parts of documents, so large fields such as
+ * introduction and courses are neither transferred nor deserialized.
+ */
+@Service
+public class ProjectionService {
+    private static final String KEYWORD_SUFFIX = ".keyword";
+    private static final ObjectMapper FIELDS_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+
+    private final ElasticsearchClient client;
+
+    public ProjectionService(ElasticsearchClient client) {
+        this.client = client;
+    }
+
+    public SearchResponse<StudentSummary> searchSummaries(String index, Query query) throws IOException {
+        return search(index, query, StudentSummary.FIELDS, List.of(), StudentSummary.class);
+    }
+
+    public <T> SearchResponse<T> search(
+            String index, Query query, List<String> includes, List<String> excludes, Class<T> clazz
+    ) throws IOException {
+        return client.search(buildSearchRequest(index, query, includes, excludes), clazz);
+    }
+
+    public <T> GetResponse<T> get(
+            String index, String id, List<String> includes, List<String> excludes, Class<T> clazz
+    ) throws IOException {
+        var getReqBuilder = new GetRequest.Builder()
+                .index(index)
+                .id(id);
+        if (!includes.isEmpty()) {
+            getReqBuilder.sourceIncludes(includes);
+        }
+        if (!excludes.isEmpty()) {
+            getReqBuilder.sourceExcludes(excludes);
+        }
+
+        return client.get(getReqBuilder.build(), clazz);
+    }
+
+    /**
+     * Reads the fields from doc values instead of _source, and binds them to
+     * the projection type. A {@code .keyword} sub-field is bound to the
+     * property of its parent field, e.g. {@code name.keyword} to {@code name}.
+     */
+    public <T> List<T> searchDocValueFields(
+            String index, Query query, List<String> fields, Class<T> clazz
+    ) throws IOException {
+        var docValueFields = fields.stream()
+                .map(field -> FieldAndFormat.of(b -> b.field(field)))
+                .collect(Collectors.toList());
+
+        var searchReq = new SearchRequest.Builder()
+                .index(index)
+                .query(query)
+                .source(SourceConfig.of(b -> b.fetch(false)))
+                .docvalueFields(docValueFields)
+                .build();
+        return toProjections(client.search(searchReq, Void.class).hits().hits(), clazz);
+    }
+
+    /**
+     * Reads the fields which are mapped with {@code "store": true}, and binds
+     * them to the projection type the same way as {@link #searchDocValueFields}.
+     */
+    public <T> List<T> searchStoredFields(
+            String index, Query query, List<String> fields, Class<T> clazz
+    ) throws IOException {
+        var searchReq = new SearchRequest.Builder()
+                .index(index)
+                .query(query)
+                .source(SourceConfig.of(b -> b.fetch(false)))
+                .storedFields(fields)
+                .build();
+        return toProjections(client.search(searchReq, Void.class).hits().hits(), clazz);
+    }
+
+    SearchRequest buildSearchRequest(String index, Query query, List<String> includes, List<String> excludes) {
+        var searchReqBuilder = new SearchRequest.Builder()
+                .index(index)
+                .query(query);
+        if (!includes.isEmpty() || !excludes.isEmpty()) {
+            var sourceFilterBuilder = new SourceFilter.Builder();
+            if (!includes.isEmpty()) {
+                sourceFilterBuilder.includes(includes);
+            }
+            if (!excludes.isEmpty()) {
+                sourceFilterBuilder.excludes(excludes);
+            }
+
+            var sourceFilter = sourceFilterBuilder.build();
+            searchReqBuilder.source(SourceConfig.of(b -> b.filter(sourceFilter)));
+        }
+
+        return searchReqBuilder.build();
+    }
+
+    private <T> List<T> toProjections(List<Hit<Void>> hits, Class<T> clazz) {
+        return hits.stream()
+                .map(hit -> toProjection(hit.fields(), clazz))
+                .collect(Collectors.toList());
+    }
+
+    private <T> T toProjection(Map<String, JsonData> fields, Class<T> clazz) {
+        var properties = new HashMap<String, Object>();
+        fields.forEach((field, value) -> {
+            // Fields are always returned as arrays.
+            var values = value.to(Object.class);
+            if (values instanceof List && ((List<?>) values).size() == 1) {
+                values = ((List<?>) values).get(0);
+            }
+
+            properties.put(toPropertyName(field), values);
+        });
+
+        return FIELDS_MAPPER.convertValue(properties, clazz);
+    }
+
+    private String toPropertyName(String field) {
+        return field.endsWith(KEYWORD_SUFFIX)
+                ? field.substring(0, field.length() - KEYWORD_SUFFIX.length())
+                : field;
+    }
+}
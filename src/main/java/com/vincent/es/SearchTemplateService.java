@@ -0,0 +1,154 @@
+package com.vincent.es;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.StoredScript;
+import co.elastic.clients.elasticsearch.core.PutScriptRequest;
+import co.elastic.clients.elasticsearch.core.SearchTemplateRequest;
+import co.elastic.clients.elasticsearch.core.SearchTemplateResponse;
+import co.elastic.clients.json.JsonData;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Executes searches through mustache templates stored in the cluster.
+ * Each template is uploaded once and then referenced by id, so a search
+ * only sends the template id and its parameters instead of the whole query.
+ * If the stored template has been removed from the cluster, it is uploaded
+ * again and the search is retried.
+ */
+@Service
+public class SearchTemplateService {
+    private final ElasticsearchClient client;
+    private final Set<StudentSearchTemplate> registeredTemplates = ConcurrentHashMap.newKeySet();
+
+    public SearchTemplateService(ElasticsearchClient client) {
+        this.client = client;
+    }
+
+    public void register(StudentSearchTemplate template) throws IOException {
+        var resource = new ClassPathResource(template.getResourcePath());
+        var source = StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8);
+
+        var storedScript = new StoredScript.Builder()
+                .lang("mustache")
+                .source(source)
+                .build();
+        var putScriptReq = new PutScriptRequest.Builder()
+                .id(template.getId())
+                .script(storedScript)
+                .build();
+        client.putScript(putScriptReq);
+
+        registeredTemplates.add(template);
+    }
+
+    public <T> SearchTemplateResponse<T> searchByGradeRange(
+            String index, int minGrade, int maxGrade, Class<T> clazz
+    ) throws IOException {
+        if (minGrade > maxGrade) {
+            throw new IllegalArgumentException(
+                    "Min grade " + minGrade + " is greater than max grade " + maxGrade);
+        }
+
+        var params = Map.of(
+                "min_grade", JsonData.of(minGrade),
+                "max_grade", JsonData.of(maxGrade)
+        );
+        return search(index, StudentSearchTemplate.GRADE_RANGE, params, clazz);
+    }
+
+    public <T> SearchTemplateResponse<T> searchByDepartments(
+            String index, List<String> departments, Class<T> clazz
+    ) throws IOException {
+        if (departments == null || departments.isEmpty()) {
+            throw new IllegalArgumentException("Departments must not be empty");
+        }
+
+        var params = Map.of("departments", JsonData.of(departments));
+        return search(index, StudentSearchTemplate.DEPARTMENTS, params, clazz);
+    }
+
+    public <T> SearchTemplateResponse<T> searchByEnglishIssuedDateGauss(
+            String index, Date origin, String offset, String scale, double decay, Class<T> clazz
+    ) throws IOException {
+        Objects.requireNonNull(origin, "origin");
+        return searchByEnglishIssuedDateGauss(index, String.valueOf(origin.getTime()), offset, scale, decay, clazz);
+    }
+
+    /**
+     * @param origin a date such as {@code "2022-07-23"}, epoch millis, or date math such as {@code "now"}
+     * @param offset a time unit such as {@code "90d"}
+     * @param scale  a time unit such as {@code "270d"}
+     * @param decay  the score at the distance of scale, between 0 and 1 exclusive
+     */
+    public <T> SearchTemplateResponse<T> searchByEnglishIssuedDateGauss(
+            String index, String origin, String offset, String scale, double decay, Class<T> clazz
+    ) throws IOException {
+        Objects.requireNonNull(origin, "origin");
+        Objects.requireNonNull(offset, "offset");
+        Objects.requireNonNull(scale, "scale");
+        if (decay <= 0 || decay >= 1) {
+            throw new IllegalArgumentException("Decay " + decay + " is not between 0 and 1");
+        }
+
+        var params = Map.of(
+                "origin", JsonData.of(origin),
+                "offset", JsonData.of(offset),
+                "scale", JsonData.of(scale),
+                "decay", JsonData.of(decay)
+        );
+        return search(index, StudentSearchTemplate.ENGLISH_ISSUED_DATE_GAUSS, params, clazz);
+    }
+
+    private <T> SearchTemplateResponse<T> search(
+            String index, StudentSearchTemplate template, Map<String, JsonData> params, Class<T> clazz
+    ) throws IOException {
+        var missingParams = template.getRequiredParams().stream()
+                .filter(name -> params.get(name) == null)
+                .sorted()
+                .collect(Collectors.toList());
+        if (!missingParams.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Missing parameters " + missingParams + " for search template " + template.getId());
+        }
+
+        if (!registeredTemplates.contains(template)) {
+            register(template);
+        }
+
+        var searchTemplateReq = new SearchTemplateRequest.Builder()
+                .index(index)
+                .id(template.getId())
+                .params(params)
+                .build();
+
+        try {
+            return client.searchTemplate(searchTemplateReq, clazz);
+        } catch (ElasticsearchException e) {
+            if (!isScriptMissing(e)) {
+                throw e;
+            }
+
+            // The stored script was removed from the cluster, so upload it again.
+            registeredTemplates.remove(template);
+            register(template);
+            return client.searchTemplate(searchTemplateReq, clazz);
+        }
+    }
+
+    private boolean isScriptMissing(ElasticsearchException e) {
+        return e.status() == 404 && "resource_not_found_exception".equals(e.error().type());
+    }
+}
@@ -0,0 +1,186 @@
+package com.vincent.es;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.CalendarInterval;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeAggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeAggregationSource;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.DateHistogramAggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.HistogramAggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.StatsAggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.StatsAggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.TermsAggregation;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.json.JsonData;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Computes student statistics with aggregations, so only buckets come back
+ * from the cluster instead of every document.
+ */
+@Service
+public class StudentAnalyticsService {
+    private static final String AGG_NAME = "result";
+
+    private final ElasticsearchClient client;
+
+    public StudentAnalyticsService(ElasticsearchClient client) {
+        this.client = client;
+    }
+
+    public Map<String, Long> countByDepartment(String index, int size) throws IOException {
+        var termsAgg = new TermsAggregation.Builder()
+                .field("departments.keyword")
+                .size(size)
+                .build();
+
+        var result = new LinkedHashMap<String, Long>();
+        aggregate(index, termsAgg._toAggregation())
+                .sterms()
+                .buckets()
+                .array()
+                .forEach(bucket -> result.put(bucket.key(), bucket.docCount()));
+
+        return result;
+    }
+
+    public Map<Double, Long> gradeHistogram(String index, double interval) throws IOException {
+        var histogramAgg = new HistogramAggregation.Builder()
+                .field("grade")
+                .interval(interval)
+                .build();
+
+        var result = new LinkedHashMap<Double, Long>();
+        aggregate(index, histogramAgg._toAggregation())
+                .histogram()
+                .buckets()
+                .array()
+                .forEach(bucket -> result.put(bucket.key(), bucket.docCount()));
+
+        return result;
+    }
+
+    public Map<String, Long> englishIssuedDateHistogram(String index, CalendarInterval interval, String format) throws IOException {
+        var dateHistogramAgg = new DateHistogramAggregation.Builder()
+                .field("englishIssuedDate")
+                .calendarInterval(interval)
+                .format(format)
+                .build();
+
+        var result = new LinkedHashMap<String, Long>();
+        aggregate(index, dateHistogramAgg._toAggregation())
+                .dateHistogram()
+                .buckets()
+                .array()
+                .forEach(bucket -> result.put(bucket.keyAsString(), bucket.docCount()));
+
+        return result;
+    }
+
+    public StatsAggregate conductScoreStats(String index) throws IOException {
+        var statsAgg = new StatsAggregation.Builder()
+                .field("conductScore")
+                .build();
+
+        return aggregate(index, statsAgg._toAggregation()).stats();
+    }
+
+    /**
+     * Counts students per (department, grade) pair, handing each page of
+     * buckets to the consumer as soon as it arrives.
+     */
+    public void streamDepartmentGradeCounts(String index, int pageSize, Consumer<List<CompositeBucket>> consumer) throws IOException {
+        var departmentSource = CompositeAggregationSource.of(b -> b
+                .terms(t -> t.field("departments.keyword")));
+        var gradeSource = CompositeAggregationSource.of(b -> b
+                .terms(t -> t.field("grade")));
+
+        var sources = List.of(
+                Map.of("department", departmentSource),
+                Map.of("grade", gradeSource)
+        );
+        streamCompositeBuckets(index, sources, pageSize, consumer);
+    }
+
+    /**
+     * Pages through a composite aggregation with its after_key, so memory
+     * stays bounded by the page size no matter how many buckets there are.
+     * String, number and boolean after_key values are sent back as their exact
+     * JSON text. A null key, as produced by {@code missing_bucket}, cannot be
+     * sent back this way, so paging stops with an {@link IllegalStateException}.
+     */
+    public void streamCompositeBuckets(
+            String index, List<Map<String, CompositeAggregationSource>> sources,
+            int pageSize, Consumer<List<CompositeBucket>> consumer
+    ) throws IOException {
+        Map<String, String> afterKey = null;
+
+        do {
+            var compositeAggBuilder = new CompositeAggregation.Builder()
+                    .sources(sources)
+                    .size(pageSize);
+            if (afterKey != null) {
+                compositeAggBuilder.after(afterKey);
+            }
+
+            var compositeAgg = aggregate(index, compositeAggBuilder.build()._toAggregation()).composite();
+            var buckets = compositeAgg.buckets().array();
+            if (buckets.isEmpty()) {
+                break;
+            }
+            consumer.accept(buckets);
+
+            afterKey = toAfterKey(compositeAgg.afterKey());
+        } while (afterKey != null);
+    }
+
+    private Aggregate aggregate(String index, Aggregation aggregation) throws IOException {
+        var searchReq = new SearchRequest.Builder()
+                .index(index)
+                .size(0)
+                .aggregations(AGG_NAME, aggregation)
+                .build();
+
+        return client.search(searchReq, Void.class)
+                .aggregations()
+                .get(AGG_NAME);
+    }
+
+    private Map<String, String> toAfterKey(Map<String, JsonData> compositeKey) {
+        if (compositeKey == null || compositeKey.isEmpty()) {
+            return null;
+        }
+
+        var afterKey = new LinkedHashMap<String, String>();
+        compositeKey.forEach((name, value) -> afterKey.put(name, toAfterKeyValue(name, value)));
+        return afterKey;
+    }
+
+    private String toAfterKeyValue(String name, JsonData value) {
+        var json = value == null ? null : value.toJson();
+
+        if (json instanceof JsonString) {
+            return ((JsonString) json).getString();
+        }
+        if (json instanceof JsonNumber) {
+            return json.toString();
+        }
+        if (JsonValue.TRUE.equals(json) || JsonValue.FALSE.equals(json)) {
+            return json.toString();
+        }
+
+        throw new IllegalStateException(
+                "Cannot continue composite aggregation from after_key [" + name + "] with value " + json);
+    }
+}
@@ -0,0 +1,29 @@
+package com.vincent.es;
+
+import java.util.Set;
+
+public enum StudentSearchTemplate {
+    GRADE_RANGE("student-grade-range", "min_grade", "max_grade"),
+    DEPARTMENTS("student-departments", "departments"),
+    ENGLISH_ISSUED_DATE_GAUSS("student-english-issued-date-gauss", "origin", "offset", "scale", "decay");
+
+    private final String id;
+    private final Set<String> requiredParams;
+
+    StudentSearchTemplate(String id, String... requiredParams) {
+        this.id = id;
+        this.requiredParams = Set.of(requiredParams);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Set<String> getRequiredParams() {
+        return requiredParams;
+    }
+
+    public String getResourcePath() {
+        return "search-templates/" + id + ".mustache";
+    }
+}
@@ -0,0 +1,35 @@
+package com.vincent.es;
+
+import java.util.List;
+
+public class StudentSummary {
+    public static final List<String> FIELDS = List.of("id", "name", "grade");
+
+    private String id;
+    private String name;
+    private int grade;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getGrade() {
+        return grade;
+    }
+
+    public void setGrade(int grade) {
+        this.grade = grade;
+    }
+}
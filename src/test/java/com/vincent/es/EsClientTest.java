@@ -2,6 +2,9 @@ package com.vincent.es;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch._types.*;
+import co.elastic.clients.elasticsearch._types.aggregations.CalendarInterval;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeAggregationSource;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeBucket;
 import co.elastic.clients.elasticsearch._types.query_dsl.*;
 import co.elastic.clients.elasticsearch.core.*;
 import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
@@ -12,16 +15,21 @@ import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
 import co.elastic.clients.elasticsearch.indices.DeleteIndexRequest;
 import co.elastic.clients.json.JsonData;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -35,8 +43,20 @@ public class EsClientTest {
     @Autowired
     private ElasticsearchClient client;
 
+    @Autowired
+    private SearchTemplateService searchTemplateService;
+
+    @Autowired
+    private StudentAnalyticsService analyticsService;
+
+    @Autowired
+    private ProjectionService projectionService;
+
     private final String INDEX_STUDENT = "student";
 
+    @Rule
+    public TemporaryFolder checkpointFolder = new TemporaryFolder();
+
     @Before
     public void init() throws IOException {
         var deleteIndexReq = new DeleteIndexRequest.Builder()
@@ -436,6 +456,417 @@ public class EsClientTest {
         assertDocumentScore(searchRes, expectedScore);
     }
 
+    @Test
+    public void testGradeRangeSearchTemplate() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var searchRes = searchTemplateService.searchByGradeRange(INDEX_STUDENT, 2, 4, Student.class);
+
+        // Vincent, Dora, Mario
+        assertDocumentIds(true, searchRes.hits().hits(), "103", "101", "102");
+    }
+
+    @Test
+    public void testDepartmentsSearchTemplate() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var searchRes = searchTemplateService.searchByDepartments(
+                INDEX_STUDENT, List.of("資訊管理", "企業管理"), Student.class);
+
+        // Vincent, Winnie
+        assertDocumentIds(true, searchRes.hits().hits(), "103", "104");
+    }
+
+    @Test
+    public void testEnglishIssuedDateGaussSearchTemplate() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var now = new Date(1658592000000L);
+
+        var searchRes = searchTemplateService.searchByEnglishIssuedDateGauss(
+                INDEX_STUDENT, now, "90d", "270d", 0.5, Student.class);
+
+        var expectedScore = Map.of(
+                "102", 1.0,
+                "104", 0.8195,
+                "101", 0.2378,
+                "103", 0.1132
+        );
+        assertDocumentScore(searchRes.hits().hits(), expectedScore);
+    }
+
+    @Test
+    public void testEnglishIssuedDateGaussSearchTemplate_DateString() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var searchRes = searchTemplateService.searchByEnglishIssuedDateGauss(
+                INDEX_STUDENT, "2022-05-01", "90d", "270d", 0.5, Student.class);
+
+        // Mario is issued on the origin date.
+        var topHit = searchRes.hits().hits().get(0);
+        assertEquals("102", topHit.id());
+        assertEquals(1.0, topHit.score(), 0.0001);
+    }
+
+    @Test
+    public void testSearchTemplateWithInvalidParams() {
+        assertThrows(IllegalArgumentException.class, () ->
+                searchTemplateService.searchByGradeRange(INDEX_STUDENT, 4, 2, Student.class));
+        assertThrows(IllegalArgumentException.class, () ->
+                searchTemplateService.searchByDepartments(INDEX_STUDENT, List.of(), Student.class));
+        assertThrows(IllegalArgumentException.class, () ->
+                searchTemplateService.searchByEnglishIssuedDateGauss(
+                        INDEX_STUDENT, "now", "90d", "270d", 1.5, Student.class));
+    }
+
+    @Test
+    public void testSearchTemplateRegisteredAgainAfterDeleted() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        searchTemplateService.searchByGradeRange(INDEX_STUDENT, 2, 4, Student.class);
+
+        var deleteScriptReq = new DeleteScriptRequest.Builder()
+                .id(StudentSearchTemplate.GRADE_RANGE.getId())
+                .build();
+        client.deleteScript(deleteScriptReq);
+
+        var searchRes = searchTemplateService.searchByGradeRange(INDEX_STUDENT, 2, 4, Student.class);
+
+        // Vincent, Dora, Mario
+        assertDocumentIds(true, searchRes.hits().hits(), "103", "101", "102");
+    }
+
+    @Test
+    public void testCountByDepartment() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var actualCounts = analyticsService.countByDepartment(INDEX_STUDENT, 10);
+
+        var expectedCounts = Map.of(
+                "財務金融", 2L,
+                "資訊管理", 1L,
+                "企業管理", 1L,
+                "會計", 1L
+        );
+        assertEquals(expectedCounts, actualCounts);
+    }
+
+    @Test
+    public void testGradeHistogram() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var actualCounts = analyticsService.gradeHistogram(INDEX_STUDENT, 2);
+
+        // [0, 2) -> Winnie, [2, 4) -> Vincent, Mario, [4, 6) -> Dora
+        var expectedCounts = Map.of(
+                0.0, 1L,
+                2.0, 2L,
+                4.0, 1L
+        );
+        assertEquals(expectedCounts, actualCounts);
+    }
+
+    @Test
+    public void testEnglishIssuedDateHistogram() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var actualCounts = analyticsService.englishIssuedDateHistogram(
+                INDEX_STUDENT, CalendarInterval.Year, "yyyy");
+
+        var expectedCounts = Map.of(
+                "2021", 3L,
+                "2022", 1L
+        );
+        assertEquals(expectedCounts, actualCounts);
+    }
+
+    @Test
+    public void testConductScoreStats() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var stats = analyticsService.conductScoreStats(INDEX_STUDENT);
+
+        assertEquals(4, stats.count());
+        assertEquals(71.0, stats.min(), 0.0001);
+        assertEquals(86.0, stats.max(), 0.0001);
+        assertEquals(78.5, stats.avg(), 0.0001);
+        assertEquals(314.0, stats.sum(), 0.0001);
+    }
+
+    @Test
+    public void testStreamDepartmentGradeCounts() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var pages = new ArrayList<List<CompositeBucket>>();
+        analyticsService.streamDepartmentGradeCounts(INDEX_STUDENT, 2, pages::add);
+
+        // (企業管理, 1), (會計, 3), (財務金融, 2), (財務金融, 4), (資訊管理, 2)
+        assertEquals(3, pages.size());
+        pages.forEach(page -> assertTrue(page.size() <= 2));
+
+        var totalDocCount = pages.stream()
+                .flatMap(List::stream)
+                .mapToLong(CompositeBucket::docCount)
+                .sum();
+        assertEquals(5, totalDocCount);
+    }
+
+    @Test
+    public void testStreamCompositeBucketsWithBooleanAfterKey() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var jobPrimarySource = CompositeAggregationSource.of(b -> b
+                .terms(t -> t.field("job.primary")));
+        var sources = List.of(Map.of("jobPrimary", jobPrimarySource));
+
+        var pages = new ArrayList<List<CompositeBucket>>();
+        analyticsService.streamCompositeBuckets(INDEX_STUDENT, sources, 1, pages::add);
+
+        // false -> Winnie, true -> Vincent
+        assertEquals(2, pages.size());
+        var totalDocCount = pages.stream()
+                .flatMap(List::stream)
+                .mapToLong(CompositeBucket::docCount)
+                .sum();
+        assertEquals(2, totalDocCount);
+    }
+
+    @Test
+    public void testStreamCompositeBucketsWithNullAfterKey() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var jobPrimarySource = CompositeAggregationSource.of(b -> b
+                .terms(t -> t.field("job.primary").missingBucket(true)));
+        var sources = List.of(Map.of("jobPrimary", jobPrimarySource));
+
+        // The bucket of missing job.primary comes first, so its null key becomes the after_key.
+        var pages = new ArrayList<List<CompositeBucket>>();
+        var e = assertThrows(IllegalStateException.class, () ->
+                analyticsService.streamCompositeBuckets(INDEX_STUDENT, sources, 1, pages::add));
+
+        assertTrue(e.getMessage().contains("jobPrimary"));
+        assertEquals(1, pages.size());
+    }
+
+    @Test
+    public void testSearchSummaries() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var query = MatchAllQuery.of(b -> b)._toQuery();
+        var searchRes = projectionService.searchSummaries(INDEX_STUDENT, query);
+
+        var expectedNames = students.stream()
+                .collect(Collectors.toMap(Student::getId, Student::getName));
+        var actualNames = searchRes.hits().hits().stream()
+                .map(Hit::source)
+                .collect(Collectors.toMap(StudentSummary::getId, StudentSummary::getName));
+        assertEquals(expectedNames, actualNames);
+    }
+
+    @Test
+    public void testGetDocumentWithSourceExcludes() throws IOException {
+        var student = SampleData.get().get(0);
+        createDocument(student);
+
+        var getRes = projectionService.get(
+                INDEX_STUDENT, student.getId(), List.of(), List.of("introduction", "courses"), Student.class);
+
+        var actualStudent = Optional.ofNullable(getRes.source()).orElseThrow();
+        assertEquals(student.getName(), actualStudent.getName());
+        assertEquals(student.getGrade(), actualStudent.getGrade());
+        assertNull(actualStudent.getIntroduction());
+        assertNull(actualStudent.getCourses());
+    }
+
+    @Test
+    public void testDocValueFields() throws IOException {
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var query = TermQuery.of(b -> b.field("grade").value(3))._toQuery();
+        var summaries = projectionService.searchDocValueFields(
+                INDEX_STUDENT, query, List.of("id.keyword", "name.keyword", "grade"), StudentSummary.class);
+
+        // Mario
+        assertEquals(1, summaries.size());
+        var summary = summaries.get(0);
+        assertEquals("102", summary.getId());
+        assertEquals("Mario Lu", summary.getName());
+        assertEquals(3, summary.getGrade());
+    }
+
+    @Test
+    public void testStoredFields() throws IOException {
+        var deleteIndexReq = new DeleteIndexRequest.Builder()
+                .index(INDEX_STUDENT)
+                .build();
+        client.indices().delete(deleteIndexReq);
+
+        var createIndexReq = new CreateIndexRequest.Builder()
+                .index(INDEX_STUDENT)
+                .mappings(m -> m
+                        .properties("id", p -> p.keyword(k -> k.store(true)))
+                        .properties("name", p -> p.keyword(k -> k.store(true)))
+                        .properties("grade", p -> p.integer(i -> i.store(true))))
+                .build();
+        client.indices().create(createIndexReq);
+
+        var students = SampleData.get();
+        createDocuments(students);
+
+        var query = TermQuery.of(b -> b.field("grade").value(3))._toQuery();
+        var summaries = projectionService.searchStoredFields(
+                INDEX_STUDENT, query, StudentSummary.FIELDS, StudentSummary.class);
+
+        // Mario
+        assertEquals(1, summaries.size());
+        var summary = summaries.get(0);
+        assertEquals("102", summary.getId());
+        assertEquals("Mario Lu", summary.getName());
+        assertEquals(3, summary.getGrade());
+    }
+
+    @Test
+    public void testChangeFeed() throws IOException {
+        var checkpointFile = newCheckpointFile();
+        var changedIds = new ArrayList<String>();
+
+        var changeFeed = new ChangeFeed<>(client, INDEX_STUDENT, Student.class, checkpointFile, 3);
+        changeFeed.subscribe(hits -> hits.forEach(hit -> changedIds.add(hit.id())));
+
+        var students = SampleData.get();
+        createDocuments(students);
+        assertEquals(4, changeFeed.poll());
+        assertEquals(4, changedIds.size());
+
+        var student = students.get(0);
+        student.setGrade(3);
+        indexDocument(student, Refresh.True);
+
+        changedIds.clear();
+        assertEquals(1, changeFeed.poll());
+        assertEquals(List.of(student.getId()), changedIds);
+
+        // Resume from the saved checkpoint
+        var resumedFeed = new ChangeFeed<>(client, INDEX_STUDENT, Student.class, checkpointFile, 3);
+        assertEquals(changeFeed.getCheckpoint(), resumedFeed.getCheckpoint());
+        assertEquals(0, resumedFeed.poll());
+    }
+
+    @Test
+    public void testChangeFeedWithSeqNoGaps() throws IOException {
+        var changedIds = new ArrayList<String>();
+
+        var changeFeed = new ChangeFeed<>(client, INDEX_STUDENT, Student.class, newCheckpointFile(), 10);
+        changeFeed.subscribe(hits -> hits.forEach(hit -> changedIds.add(hit.id())));
+
+        // The first update leaves a _seq_no which no document has anymore.
+        var student = SampleData.get().get(0);
+        createDocument(student);
+        student.setGrade(3);
+        indexDocument(student, Refresh.False);
+        student.setGrade(4);
+        indexDocument(student, Refresh.False);
+
+        // Changes are delivered even if they are not refreshed yet.
+        assertEquals(1, changeFeed.poll());
+        assertEquals(List.of(student.getId()), changedIds);
+        assertEquals(2, changeFeed.getCheckpoint());
+
+        changedIds.clear();
+        assertEquals(0, changeFeed.poll());
+        assertTrue(changedIds.isEmpty());
+    }
+
+    @Test
+    public void testChangeFeedAfterIndexRecreated() throws IOException {
+        var checkpointFile = newCheckpointFile();
+
+        var changeFeed = new ChangeFeed<>(client, INDEX_STUDENT, Student.class, checkpointFile, 10);
+        createDocuments(SampleData.get());
+        assertEquals(4, changeFeed.poll());
+
+        init();
+        createDocument(SampleData.get().get(0));
+
+        // A new feed on the same checkpoint file starts over.
+        var resumedFeed = new ChangeFeed<>(client, INDEX_STUDENT, Student.class, checkpointFile, 10);
+        assertEquals(-1, resumedFeed.getCheckpoint());
+
+        // The running feed starts over as well.
+        assertEquals(1, changeFeed.poll());
+        assertEquals(0, changeFeed.getCheckpoint());
+    }
+
+    @Test
+    public void testChangeFeedRejectsMultipleShards() throws IOException {
+        var deleteIndexReq = new DeleteIndexRequest.Builder()
+                .index(INDEX_STUDENT)
+                .build();
+        client.indices().delete(deleteIndexReq);
+
+        var createIndexReq = new CreateIndexRequest.Builder()
+                .index(INDEX_STUDENT)
+                .settings(b -> b.numberOfShards("2"))
+                .build();
+        client.indices().create(createIndexReq);
+
+        var checkpointFile = newCheckpointFile();
+        assertThrows(IllegalArgumentException.class, () ->
+                new ChangeFeed<>(client, INDEX_STUDENT, Student.class, checkpointFile, 10));
+    }
+
+    @Test
+    public void testChangeFeedStartAndStop() throws IOException, InterruptedException {
+        var students = SampleData.get();
+        var changedIds = Collections.synchronizedList(new ArrayList<String>());
+        var delivered = new CountDownLatch(students.size());
+
+        var changeFeed = new ChangeFeed<>(client, INDEX_STUDENT, Student.class, newCheckpointFile(), 10);
+        changeFeed.subscribe(hits -> hits.forEach(hit -> {
+            changedIds.add(hit.id());
+            delivered.countDown();
+        }));
+        changeFeed.start(100);
+
+        var pollingThread = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("change-feed-" + INDEX_STUDENT))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(pollingThread.isDaemon());
+
+        createDocuments(students);
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        changeFeed.stop();
+        assertFalse(pollingThread.isAlive());
+        assertEquals(students.size(), changedIds.size());
+
+        // After stop, the change is left for the next poll.
+        var student = students.get(0);
+        student.setGrade(3);
+        indexDocument(student, Refresh.True);
+
+        assertEquals(1, changeFeed.poll());
+        assertEquals(students.size() + 1, changedIds.size());
+    }
+
+    private Path newCheckpointFile() throws IOException {
+        return checkpointFolder.newFile().toPath();
+    }
+
     private CreateResponse createDocument(Student student) throws IOException {
         var createReq = new CreateRequest.Builder<Student>()
                 .index(INDEX_STUDENT)
@@ -454,6 +885,17 @@ public class EsClientTest {
         return res;
     }
 
+    private IndexResponse indexDocument(Student student, Refresh refresh) throws IOException {
+        var indexReq = new IndexRequest.Builder<Student>()
+                .index(INDEX_STUDENT)
+                .id(student.getId())
+                .document(student)
+                .refresh(refresh)
+                .build();
+
+        return client.index(indexReq);
+    }
+
     private BulkResponse createDocuments(List<Student> students) throws IOException {
         var requestBuilder = new BulkRequest.Builder().index(INDEX_STUDENT);
         for (var student : students) {
@@ -516,9 +958,11 @@ public class EsClientTest {
     }
 
     private void assertDocumentIds(boolean ignoreOrder, SearchResponse<Student> res, String... expectedIdArray) {
-        var actualIds = res
-                .hits()
-                .hits()
+        assertDocumentIds(ignoreOrder, res.hits().hits(), expectedIdArray);
+    }
+
+    private void assertDocumentIds(boolean ignoreOrder, List<Hit<Student>> hits, String... expectedIdArray) {
+        var actualIds = hits
                 .stream()
                 .map(Hit::source)
                 .map(Student::getId)
@@ -534,8 +978,12 @@ public class EsClientTest {
     }
 
     private void assertDocumentScore(SearchResponse<Student> res, Map<String, Double> expectedScoreMap) {
+        assertDocumentScore(res.hits().hits(), expectedScoreMap);
+    }
+
+    private void assertDocumentScore(List<Hit<Student>> hits, Map<String, Double> expectedScoreMap) {
         var actualScoreMap = new HashMap<String, Double>();
-        res.hits().hits().forEach(hit -> actualScoreMap.put(hit.id(), hit.score()));
+        hits.forEach(hit -> actualScoreMap.put(hit.id(), hit.score()));
 
         expectedScoreMap.forEach((docId, score) ->
                 assertEquals(actualScoreMap.get(docId), score, 0.0001));
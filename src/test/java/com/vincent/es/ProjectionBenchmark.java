@@ -0,0 +1,151 @@
+package com.vincent.es;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch._types.query_dsl.MatchAllQuery;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.IndexOperation;
+import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
+import co.elastic.clients.elasticsearch.indices.DeleteIndexRequest;
+import co.elastic.clients.json.JsonpDeserializer;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark, not part of the regular test run. Compares the response size and
+ * the deserialization time of the same search sent by {@link ProjectionService},
+ * once with the full {@link Student} source and once projected to
+ * {@link StudentSummary}. Run it with {@code mvn test -Dtest=ProjectionBenchmark}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ProjectionBenchmark {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProjectionBenchmark.class);
+
+    private static final String INDEX_BENCHMARK = "student_projection_benchmark";
+    private static final int DOCUMENT_COUNT = 1000;
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int MEASURED_ITERATIONS = 200;
+
+    @Autowired
+    private ElasticsearchClient client;
+
+    @Autowired
+    private RestClient restClient;
+
+    @Autowired
+    private ProjectionService projectionService;
+
+    @Before
+    public void init() throws IOException {
+        var createIndexReq = new CreateIndexRequest.Builder()
+                .index(INDEX_BENCHMARK)
+                .build();
+        client.indices().create(createIndexReq);
+
+        var requestBuilder = new BulkRequest.Builder()
+                .index(INDEX_BENCHMARK)
+                .refresh(Refresh.True);
+        for (var i = 0; i < DOCUMENT_COUNT; i += 4) {
+            for (var student : SampleData.get()) {
+                student.setId(student.getId() + "-" + i);
+                var indexOp = new IndexOperation.Builder<Student>()
+                        .id(student.getId())
+                        .document(student)
+                        .build();
+                requestBuilder.operations(new BulkOperation.Builder().index(indexOp).build());
+            }
+        }
+        client.bulk(requestBuilder.build());
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        var deleteIndexReq = new DeleteIndexRequest.Builder()
+                .index(INDEX_BENCHMARK)
+                .build();
+        client.indices().delete(deleteIndexReq);
+    }
+
+    @Test
+    public void benchmarkSummaryProjection() throws IOException {
+        var query = MatchAllQuery.of(b -> b)._toQuery();
+
+        // Both variants return the same documents through ProjectionService.
+        var fullHits = projectionService.search(INDEX_BENCHMARK, query, List.of(), List.of(), Student.class)
+                .hits().total().value();
+        var summaryHits = projectionService.searchSummaries(INDEX_BENCHMARK, query)
+                .hits().total().value();
+        assertEquals(fullHits, summaryHits);
+
+        var fullReq = projectionService.buildSearchRequest(INDEX_BENCHMARK, query, List.of(), List.of());
+        var summaryReq = projectionService.buildSearchRequest(INDEX_BENCHMARK, query, StudentSummary.FIELDS, List.of());
+
+        var fullBody = fetchResponseBody(fullReq);
+        var summaryBody = fetchResponseBody(summaryReq);
+
+        var fullNanos = measureDeserialization(fullBody, Student.class);
+        var summaryNanos = measureDeserialization(summaryBody, StudentSummary.class);
+
+        LOGGER.info("Full Student:   {} bytes, {} us per response", fullBody.length, fullNanos / 1000);
+        LOGGER.info("StudentSummary: {} bytes, {} us per response", summaryBody.length, summaryNanos / 1000);
+
+        assertTrue(summaryBody.length < fullBody.length);
+    }
+
+    private byte[] fetchResponseBody(SearchRequest searchReq) throws IOException {
+        var mapper = client._transport().jsonpMapper();
+        var writer = new StringWriter();
+        try (var generator = mapper.jsonProvider().createGenerator(writer)) {
+            searchReq.serialize(generator, mapper);
+        }
+
+        var request = new Request("POST", "/" + INDEX_BENCHMARK + "/_search");
+        request.addParameter("size", String.valueOf(DOCUMENT_COUNT));
+        request.setJsonEntity(writer.toString());
+
+        var response = restClient.performRequest(request);
+        return EntityUtils.toByteArray(response.getEntity());
+    }
+
+    private <T> long measureDeserialization(byte[] body, Class<T> clazz) {
+        var mapper = client._transport().jsonpMapper();
+        var deserializer = SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(clazz));
+
+        for (var i = 0; i < WARMUP_ITERATIONS; i++) {
+            try (var parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(body))) {
+                deserializer.deserialize(parser, mapper);
+            }
+        }
+
+        var start = System.nanoTime();
+        for (var i = 0; i < MEASURED_ITERATIONS; i++) {
+            try (var parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(body))) {
+                deserializer.deserialize(parser, mapper);
+            }
+        }
+
+        return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+    }
+}